@@ -0,0 +1,201 @@
+package com.example.chatter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UTFDataFormatException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * This represents the stored message history of a chat room.
+ * Messages are appended to a log file as records in the format of {@link HistoryProtocol#writeRecord}.
+ * A second index file holds the log offset of every record as a fixed 8-byte entry, so the record with
+ * a given sequence number is found with a single seek, and a page of history is one contiguous byte
+ * range of the log that can be sent to a client without decoding it.
+ */
+public class ChatHistory implements Closeable {
+    // The log of message records
+    private final RandomAccessFile log;
+
+    // The offsets of the records in the log, indexed by sequence number
+    private final RandomAccessFile index;
+
+    // The number of records stored, which is also the next sequence number
+    private long size;
+
+    // The length of the log in bytes
+    private long logLength;
+
+    /**
+     * Opens the history of a room, creating its files if they do not exist.
+     * A crash can leave a record without its index entry, or index entries whose records never fully
+     * reached the log. The history is cut back to the last indexed record that is complete in the log,
+     * so that later records follow it directly.
+     *
+     * @param directory The directory holding the history files.
+     * @param room      The room whose history is opened.
+     * @throws IOException If the history files cannot be opened.
+     */
+    public ChatHistory(Path directory, String room) throws IOException {
+        Files.createDirectories(directory);
+        this.log = new RandomAccessFile(directory.resolve(room + ".log").toFile(), "rw");
+        this.index = new RandomAccessFile(directory.resolve(room + ".idx").toFile(), "rw");
+        this.size = index.length() / Long.BYTES;
+        long end = -1;
+        while (size > 0 && end < 0) {
+            end = endOfRecord(offsetOf(size - 1));
+            if (end < 0) {
+                size--;
+            }
+        }
+        this.logLength = Math.max(0, end);
+        index.setLength(size * Long.BYTES);
+        log.setLength(logLength);
+    }
+
+    /**
+     * Appends a message to the history.
+     *
+     * @param sender    The username of the sender.
+     * @param content   The textual content of the message.
+     * @param timestamp The time the message was sent, in milliseconds since the epoch.
+     * @return The sequence number of the message.
+     * @throws IOException If the message cannot be written.
+     */
+    public synchronized long append(String sender, String content, long timestamp) throws IOException {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        HistoryProtocol.writeRecord(new DataOutputStream(record), timestamp, sender, content);
+
+        // Write the record before its index entry so the index never points past the log
+        log.seek(logLength);
+        log.write(record.toByteArray());
+        index.seek(size * Long.BYTES);
+        index.writeLong(logLength);
+        logLength += record.size();
+        return size++;
+    }
+
+    /**
+     * Retrieves the number of messages in the history.
+     *
+     * @return The number of messages.
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Writes the body of a {@link HistoryProtocol#HISTORY_PAGE} frame holding the latest records before
+     * the given sequence number. The records are copied from the log to the stream as raw bytes,
+     * without decoding them.
+     *
+     * @param out    The stream to write to.
+     * @param before The sequence number the page ends before; clamped to the size of the history.
+     * @param limit  The maximum number of records in the page.
+     * @throws IOException If the history cannot be read or the stream cannot be written.
+     */
+    public synchronized void writePage(DataOutputStream out, long before, int limit) throws IOException {
+        long end = Math.max(0, Math.min(before, size));
+        long first = Math.max(0, end - Math.max(0, limit));
+        long start = offsetOf(first);
+        long length = offsetOf(end) - start;
+
+        out.writeLong(first);
+        out.writeInt((int) (end - first));
+        out.writeInt((int) length);
+        out.flush();
+
+        FileChannel channel = log.getChannel();
+        WritableByteChannel target = Channels.newChannel(out);
+        while (length > 0) {
+            long sent = channel.transferTo(start, length, target);
+            start += sent;
+            length -= sent;
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads the latest messages before the given sequence number, for showing history without sending it.
+     * The history does not store receivers, so the receiver of every message is null.
+     *
+     * @param before The sequence number the messages end before; clamped to the size of the history.
+     * @param limit  The maximum number of messages to read.
+     * @return The messages, oldest first.
+     * @throws IOException If the history cannot be read.
+     */
+    public synchronized List<Message> readMessages(long before, int limit) throws IOException {
+        long end = Math.max(0, Math.min(before, size));
+        long first = Math.max(0, end - Math.max(0, limit));
+        long start = offsetOf(first);
+        byte[] records = new byte[(int) (offsetOf(end) - start)];
+        log.seek(start);
+        log.readFully(records);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(records));
+        List<Message> messages = new ArrayList<>((int) (end - first));
+        for (long seq = first; seq < end; seq++) {
+            long timestamp = in.readLong();
+            User sender = new User(in.readUTF());
+            Message message = new Message(sender, null, in.readUTF());
+            message.setTimestamp(new Date(timestamp));
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    /**
+     * Retrieves the log offset of a record, or the log length for the sequence number after the last.
+     *
+     * @param seq The sequence number of the record.
+     * @return The offset of the record in the log.
+     * @throws IOException If the index cannot be read.
+     */
+    private long offsetOf(long seq) throws IOException {
+        if (seq >= size) {
+            return logLength;
+        }
+        index.seek(seq * Long.BYTES);
+        return index.readLong();
+    }
+
+    /**
+     * Retrieves the log offset just past a record by reading over its fields.
+     *
+     * @param offset The offset of the record in the log.
+     * @return The offset of the byte after the record, or -1 if the record is not complete in the log.
+     * @throws IOException If the log cannot be read.
+     */
+    private long endOfRecord(long offset) throws IOException {
+        if (offset < 0 || offset > log.length()) {
+            return -1;
+        }
+        try {
+            log.seek(offset);
+            log.readLong();
+            log.readUTF();
+            log.readUTF();
+            return log.getFilePointer();
+        } catch (EOFException | UTFDataFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        log.close();
+        index.close();
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.chatter;
+
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * This defines the frames exchanged between the chat client and server.
+ * Every frame starts with a type byte followed by its fields:
+ * <ul>
+ *     <li>{@link #MESSAGE} from the client: content. From the server: sequence number and content.</li>
+ *     <li>{@link #ACK}: the sequence number the server gave the client's last message.</li>
+ *     <li>{@link #HISTORY_REQUEST}: room, before-sequence and page size limit.</li>
+ *     <li>{@link #HISTORY_PAGE}: room, sequence number of the first record, record count,
+ *     byte length and the raw history records as stored by {@link ChatHistory}.</li>
+ * </ul>
+ */
+public final class HistoryProtocol {
+    // Frame types
+    public static final byte MESSAGE = 1;
+    public static final byte ACK = 2;
+    public static final byte HISTORY_REQUEST = 3;
+    public static final byte HISTORY_PAGE = 4;
+
+    // The room shared by user One and user Two
+    public static final String DEFAULT_ROOM = "one-two";
+
+    // The largest page the server will send for one request
+    public static final int MAX_PAGE_SIZE = 500;
+
+    private HistoryProtocol() {
+    }
+
+    /**
+     * Writes a message frame from the client to the server.
+     *
+     * @param out     The stream to write to.
+     * @param content The textual content of the message.
+     * @throws IOException If the frame cannot be written.
+     */
+    public static void writeMessage(DataOutputStream out, String content) throws IOException {
+        out.writeByte(MESSAGE);
+        out.writeUTF(content);
+        out.flush();
+    }
+
+    /**
+     * Writes a message frame from the server to the client.
+     *
+     * @param out     The stream to write to.
+     * @param seq     The sequence number of the message in the history.
+     * @param content The textual content of the message.
+     * @throws IOException If the frame cannot be written.
+     */
+    public static void writeMessage(DataOutputStream out, long seq, String content) throws IOException {
+        out.writeByte(MESSAGE);
+        out.writeLong(seq);
+        out.writeUTF(content);
+        out.flush();
+    }
+
+    /**
+     * Writes the acknowledgement of a message the client sent.
+     *
+     * @param out The stream to write to.
+     * @param seq The sequence number the message was given in the history.
+     * @throws IOException If the frame cannot be written.
+     */
+    public static void writeAck(DataOutputStream out, long seq) throws IOException {
+        out.writeByte(ACK);
+        out.writeLong(seq);
+        out.flush();
+    }
+
+    /**
+     * Writes a history request for the records before the given sequence number.
+     *
+     * @param out    The stream to write to.
+     * @param room   The room whose history is requested.
+     * @param before The sequence number the page ends before; Long.MAX_VALUE for the latest page.
+     * @param limit  The maximum number of records in the page.
+     * @throws IOException If the frame cannot be written.
+     */
+    public static void writeHistoryRequest(DataOutputStream out, String room, long before, int limit) throws IOException {
+        out.writeByte(HISTORY_REQUEST);
+        out.writeUTF(room);
+        out.writeLong(before);
+        out.writeInt(limit);
+        out.flush();
+    }
+
+    /**
+     * Writes a history page frame holding the latest records before the given sequence number.
+     *
+     * @param out     The stream to write to.
+     * @param room    The room whose history was requested.
+     * @param history The history of the room, or null if the room has none.
+     * @param before  The sequence number the page ends before.
+     * @param limit   The maximum number of records in the page; capped at {@link #MAX_PAGE_SIZE}.
+     * @throws IOException If the history cannot be read or the frame cannot be written.
+     */
+    public static void writePage(DataOutputStream out, String room, ChatHistory history, long before, int limit) throws IOException {
+        out.writeByte(HISTORY_PAGE);
+        out.writeUTF(room);
+        if (history != null) {
+            history.writePage(out, before, Math.min(limit, MAX_PAGE_SIZE));
+        } else {
+            out.writeLong(0);
+            out.writeInt(0);
+            out.writeInt(0);
+            out.flush();
+        }
+    }
+
+    /**
+     * Writes one history record. Records are read back field by field in the same order.
+     *
+     * @param out       The stream to write to.
+     * @param timestamp The time the message was sent, in milliseconds since the epoch.
+     * @param sender    The username of the sender.
+     * @param content   The textual content of the message.
+     * @throws IOException If the record cannot be written.
+     */
+    public static void writeRecord(DataOutput out, long timestamp, String sender, String content) throws IOException {
+        out.writeLong(timestamp);
+        out.writeUTF(sender);
+        out.writeUTF(content);
+    }
+}
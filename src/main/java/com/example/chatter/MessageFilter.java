@@ -0,0 +1,350 @@
+package com.example.chatter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+/**
+ * This represents the delivery rules applied to incoming messages before they reach the chat box.
+ * Rules cover muted users, blocked senders, keywords and regular expressions. Rules added to a filter
+ * apply in every room; rules added to {@link #room(String)} apply in that room only.
+ * The rules are compiled into matchers that are cheap to evaluate for every message:
+ * senders are checked against bit sets keyed by user id, all keywords are matched in a single
+ * pass over the content with an Aho-Corasick automaton, and all regular expressions are combined
+ * into one pattern.
+ */
+public class MessageFilter {
+
+    /**
+     * The outcome of checking a message against the rules.
+     */
+    public enum Decision {
+        // Declared from least to most strict
+        // Show the message as usual
+        DELIVER,
+        // Show the message without scrolling the chat to it
+        SILENT,
+        // Do not show the message at all
+        DROP
+    }
+
+    // Ids handed out to usernames the first time they appear in a rule
+    private final Map<String, Integer> userIds = new HashMap<>();
+
+    // Senders whose messages are dropped
+    private final BitSet blocked = new BitSet();
+
+    // Senders whose messages are shown without drawing attention
+    private final BitSet muted = new BitSet();
+
+    // Keywords that cause a message to be dropped, stored case folded
+    private final Set<String> keywords = new LinkedHashSet<>();
+
+    // Regular expressions that cause a message to be dropped
+    private final List<String> patterns = new ArrayList<>();
+
+    // Keyword automaton, rebuilt lazily after the keyword set changes
+    private KeywordMatcher keywordMatcher;
+
+    // Alternation of all regular expressions, rebuilt whenever a pattern is added
+    private Pattern patternMatcher;
+
+    // Rules that apply in one room only, keyed by room name
+    private final Map<String, MessageFilter> rooms = new HashMap<>();
+
+    /**
+     * Adds the rules listed in a rules file, one per line.
+     * Each line is a rule type followed by its argument: {@code block <username>}, {@code mute <username>},
+     * {@code keyword <text>} or {@code regex <pattern>}. Rules apply in every room until a {@code room <name>}
+     * line; the rules after it apply in that room only. Blank lines and lines starting with # are ignored.
+     *
+     * @param file The rules file to read.
+     * @throws IOException If the file cannot be read or holds a line that is not a rule.
+     */
+    public void loadRules(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file);
+        MessageFilter target = this;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] rule = line.split("\\s+", 2);
+            if (rule.length < 2) {
+                throw new IOException(file + ":" + (i + 1) + ": missing argument");
+            }
+            switch (rule[0]) {
+                case "room" -> target = room(rule[1]);
+                case "block" -> target.block(new User(rule[1]));
+                case "mute" -> target.mute(new User(rule[1]));
+                case "keyword" -> target.addKeyword(rule[1]);
+                case "regex" -> {
+                    try {
+                        target.addPattern(rule[1]);
+                    } catch (PatternSyntaxException e) {
+                        throw new IOException(file + ":" + (i + 1) + ": " + e.getDescription(), e);
+                    }
+                }
+                default -> throw new IOException(file + ":" + (i + 1) + ": unknown rule " + rule[0]);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the rules that apply in one room only, creating them if the room has none yet.
+     *
+     * @param room The name of the room.
+     * @return The filter holding the rules of the room.
+     */
+    public synchronized MessageFilter room(String room) {
+        return rooms.computeIfAbsent(room, name -> new MessageFilter());
+    }
+
+    /**
+     * Blocks a user so that none of their messages are delivered.
+     *
+     * @param user The user to block.
+     */
+    public synchronized void block(User user) {
+        blocked.set(idOf(user.getUsername()));
+    }
+
+    /**
+     * Removes a user from the block list.
+     *
+     * @param user The user to unblock.
+     */
+    public synchronized void unblock(User user) {
+        Integer id = userIds.get(user.getUsername());
+        if (id != null) {
+            blocked.clear(id);
+        }
+    }
+
+    /**
+     * Mutes a user so that their messages are delivered silently.
+     *
+     * @param user The user to mute.
+     */
+    public synchronized void mute(User user) {
+        muted.set(idOf(user.getUsername()));
+    }
+
+    /**
+     * Removes a user from the mute list.
+     *
+     * @param user The user to unmute.
+     */
+    public synchronized void unmute(User user) {
+        Integer id = userIds.get(user.getUsername());
+        if (id != null) {
+            muted.clear(id);
+        }
+    }
+
+    /**
+     * Adds a keyword; messages containing it, ignoring case, are dropped.
+     *
+     * @param keyword The keyword to filter on.
+     */
+    public synchronized void addKeyword(String keyword) {
+        if (!keyword.isEmpty() && keywords.add(fold(keyword))) {
+            keywordMatcher = null;
+        }
+    }
+
+    /**
+     * Adds a regular expression; messages in which it is found are dropped.
+     * All patterns are combined into one alternation, so numbered back-references are not supported,
+     * and a pattern that does not end where it starts, such as an unterminated {@code \Q} or a trailing
+     * comment in {@code (?x)} mode, is rejected.
+     *
+     * @param regex The regular expression to filter on.
+     * @throws PatternSyntaxException If the regular expression is invalid or cannot be combined.
+     */
+    public synchronized void addPattern(String regex) {
+        // A pattern that is invalid alone can still combine into a valid alternation, such as a)|(b
+        Pattern.compile(regex);
+        patterns.add(regex);
+        try {
+            patternMatcher = Pattern.compile(patterns.stream().map(pattern -> "(?:" + pattern + ")").collect(Collectors.joining("|")));
+        } catch (PatternSyntaxException e) {
+            patterns.remove(patterns.size() - 1);
+            throw e;
+        }
+    }
+
+    /**
+     * Checks a message in a room against the rules for every room and the rules of that room.
+     * The strictest decision wins.
+     *
+     * @param room    The room the message was sent in.
+     * @param sender  The user who sent the message.
+     * @param content The textual content of the message.
+     * @return The decision on how the message should be delivered.
+     */
+    public Decision check(String room, User sender, String content) {
+        Decision decision = check(sender, content);
+        MessageFilter roomFilter;
+        synchronized (this) {
+            roomFilter = rooms.get(room);
+        }
+        if (decision == Decision.DROP || roomFilter == null) {
+            return decision;
+        }
+        Decision roomDecision = roomFilter.check(sender, content);
+        return roomDecision.compareTo(decision) > 0 ? roomDecision : decision;
+    }
+
+    /**
+     * Checks a message against the rules that apply in every room.
+     *
+     * @param sender  The user who sent the message.
+     * @param content The textual content of the message.
+     * @return The decision on how the message should be delivered.
+     */
+    public synchronized Decision check(User sender, String content) {
+        Integer id = userIds.get(sender.getUsername());
+        if (id != null && blocked.get(id)) {
+            return Decision.DROP;
+        }
+        if (!keywords.isEmpty()) {
+            if (keywordMatcher == null) {
+                keywordMatcher = new KeywordMatcher(keywords);
+            }
+            if (keywordMatcher.matches(content)) {
+                return Decision.DROP;
+            }
+        }
+        if (patternMatcher != null && patternMatcher.matcher(content).find()) {
+            return Decision.DROP;
+        }
+        return id != null && muted.get(id) ? Decision.SILENT : Decision.DELIVER;
+    }
+
+    /**
+     * Retrieves the id of a username, assigning the next free id if it has none yet.
+     *
+     * @param username The username to look up.
+     * @return The id of the username.
+     */
+    private int idOf(String username) {
+        return userIds.computeIfAbsent(username, name -> userIds.size());
+    }
+
+    /**
+     * Folds the case of a keyword one character at a time, the same way the automaton folds content.
+     *
+     * @param keyword The keyword to fold.
+     * @return The folded keyword.
+     */
+    private static String fold(String keyword) {
+        char[] chars = keyword.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Aho-Corasick automaton over a set of keywords.
+     * The goto and failure functions are folded into one dense transition table over the characters
+     * that occur in the keywords, so matching costs one table lookup per character of content.
+     */
+    private static final class KeywordMatcher {
+        // Column index of each keyword character, or 0 for characters in no keyword
+        private final int[] columns = new int[Character.MAX_VALUE + 1];
+
+        // Transition table, row per state and column per character class
+        private int[][] next;
+
+        // Whether a keyword ends in each state
+        private boolean[] accepting;
+
+        KeywordMatcher(Set<String> keywords) {
+            int width = 1;
+            for (String keyword : keywords) {
+                for (int i = 0; i < keyword.length(); i++) {
+                    char c = keyword.charAt(i);
+                    if (columns[c] == 0) {
+                        columns[c] = width++;
+                    }
+                }
+            }
+
+            // Build the trie; the root is state 0
+            int states = 1;
+            next = new int[16][];
+            next[0] = new int[width];
+            accepting = new boolean[16];
+            for (String keyword : keywords) {
+                int state = 0;
+                for (int i = 0; i < keyword.length(); i++) {
+                    int column = columns[keyword.charAt(i)];
+                    if (next[state][column] == 0) {
+                        if (states == next.length) {
+                            next = Arrays.copyOf(next, states * 2);
+                            accepting = Arrays.copyOf(accepting, states * 2);
+                        }
+                        next[states] = new int[width];
+                        next[state][column] = states++;
+                    }
+                    state = next[state][column];
+                }
+                accepting[state] = true;
+            }
+
+            // Fill in the failure transitions breadth first
+            int[] fail = new int[states];
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            for (int column = 1; column < width; column++) {
+                if (next[0][column] != 0) {
+                    queue.add(next[0][column]);
+                }
+            }
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                accepting[state] |= accepting[fail[state]];
+                for (int column = 1; column < width; column++) {
+                    int child = next[state][column];
+                    if (child != 0) {
+                        fail[child] = next[fail[state]][column];
+                        queue.add(child);
+                    } else {
+                        next[state][column] = next[fail[state]][column];
+                    }
+                }
+            }
+        }
+
+        /**
+         * Checks whether any keyword occurs in the content, ignoring case.
+         *
+         * @param content The text to scan.
+         * @return True if a keyword was found.
+         */
+        boolean matches(String content) {
+            int state = 0;
+            for (int i = 0; i < content.length(); i++) {
+                char c = content.charAt(i);
+                state = next[state][columns[Character.toLowerCase(c)]];
+                if (accepting[state]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
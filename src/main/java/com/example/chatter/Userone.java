@@ -4,6 +4,7 @@ import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
@@ -19,12 +20,17 @@ import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.stage.Stage;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
 
 /**
  * A JavaFX chat application "Chatter".
@@ -36,11 +42,24 @@ public class Userone extends Application {
     private VBox chatBox;
     private ScrollPane chatScrollPane;
 
+    // The user of this window
+    private User currentUser;
+
     // Networking components
     private Socket socket;
     private DataInputStream dis;
     private DataOutputStream dos;
 
+    // History paging
+    private static final int PAGE_SIZE = 50; // Messages requested per page
+    private static final int MAX_MESSAGES = 200; // Messages kept in the chat box at most
+    private static final double PREFETCH_THRESHOLD = 0.2; // Scroll distance from an edge that loads the next page
+    private final Deque<Node> pendingAcks = new ArrayDeque<>(); // Sent messages still waiting for a sequence number
+    private boolean loading; // Whether a history page has been requested and not yet received
+    private long requestedBefore; // The before-sequence of the outstanding request
+    private boolean detached; // Whether newer messages than the bottom of the chat box exist
+    private boolean jumpToLatest; // Whether the latest page must be loaded once the outstanding request completes
+
     /**
      * The main entry point for all JavaFX applications.
      * @param args the command line arguments
@@ -62,7 +81,7 @@ public class Userone extends Application {
         BorderPane root = new BorderPane();
 
         // Create and set the top panel with user profile
-        User currentUser = new User("One");
+        currentUser = new User("One");
         currentUser.setProfilePhotoPath(getClass().getResource("/icons/1.png").toString());
         VBox topPanel = createTopPanel(currentUser);
         root.setTop(topPanel);
@@ -73,6 +92,7 @@ public class Userone extends Application {
         chatBox.setStyle("-fx-background-color: Transparent;");
         chatScrollPane = new ScrollPane(chatBox);
         chatScrollPane.setFitToWidth(true);
+        chatScrollPane.vvalueProperty().addListener((observable, oldValue, newValue) -> prefetch(newValue.doubleValue()));
         root.setCenter(chatScrollPane);
 
         // Input panel for sending messages
@@ -92,6 +112,9 @@ public class Userone extends Application {
             // Start a thread to receive messages from the user Two
             new Thread(this::receiveMessages).start();
 
+            // Load the latest screen of history
+            requestPage(Long.MAX_VALUE);
+
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -181,8 +204,17 @@ public class Userone extends Application {
     private void sendMessage(String message) {
         if (!message.isEmpty()) {
             try {
-                dos.writeUTF(message);
-                addMessageToChat("You", message);
+                HistoryProtocol.writeMessage(dos, message);
+                if (detached || (loading && requestedBefore == Long.MAX_VALUE)) {
+                    // The message will arrive with the next latest page of history
+                    jumpToLatest = true;
+                    requestPage(Long.MAX_VALUE);
+                } else {
+                    Node messageBox = addMessageToChat("You", message, new Date(), null);
+                    pendingAcks.add(messageBox);
+                    trimTop();
+                    scrollChatToBottom();
+                }
                 text.clear();
             } catch (IOException e) {
                 e.printStackTrace();
@@ -191,35 +223,241 @@ public class Userone extends Application {
     }
 
     /**
-     * Receives messages from the server and updates the chat.
+     * Receives frames from the server and updates the chat.
      */
     private void receiveMessages() {
         try {
             while (true) {
-                String receivedMessage = dis.readUTF();
-                Platform.runLater(() -> {
-                    addMessageToChat("Two", receivedMessage);
-                    scrollChatToBottom();
-                });
+                byte type = dis.readByte();
+                switch (type) {
+                    case HistoryProtocol.MESSAGE -> {
+                        long seq = dis.readLong();
+                        String receivedMessage = dis.readUTF();
+                        Platform.runLater(() -> {
+                            // While older history is shown the message is picked up by paging back down,
+                            // and it may already have arrived with the latest page
+                            if (!detached && !isShown(seq)) {
+                                addMessageToChat("Two", receivedMessage, new Date(), seq);
+                                trimTop();
+                                scrollChatToBottom();
+                            }
+                        });
+                    }
+                    case HistoryProtocol.ACK -> {
+                        long seq = dis.readLong();
+                        Platform.runLater(() -> {
+                            Node messageBox = pendingAcks.poll();
+                            if (messageBox != null) {
+                                messageBox.setUserData(seq);
+                            }
+                        });
+                    }
+                    case HistoryProtocol.HISTORY_PAGE -> {
+                        dis.readUTF(); // Only the default room is requested
+                        long firstSeq = dis.readLong();
+                        int count = dis.readInt();
+                        byte[] records = new byte[dis.readInt()];
+                        dis.readFully(records);
+                        Platform.runLater(() -> showPage(firstSeq, count, records));
+                    }
+                    default -> throw new IOException("Unknown frame type " + type);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Requests the page of history ending before the given sequence number.
+     * @param before the sequence number the page ends before, or Long.MAX_VALUE for the latest page
+     */
+    private void requestPage(long before) {
+        if (loading) {
+            return;
+        }
+        try {
+            loading = true;
+            requestedBefore = before;
+            if (before == Long.MAX_VALUE) {
+                jumpToLatest = false;
+            }
+            HistoryProtocol.writeHistoryRequest(dos, HistoryProtocol.DEFAULT_ROOM, before, PAGE_SIZE);
+        } catch (IOException e) {
+            loading = false;
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Loads the next page once the chat is scrolled close to an edge of the loaded messages.
+     * @param vvalue the vertical scroll position, from 0 at the top to 1 at the bottom
+     */
+    private void prefetch(double vvalue) {
+        if (loading || chatBox.getChildren().isEmpty()) {
+            return;
+        }
+        Long oldest = seqOf(chatBox.getChildren().get(0));
+        Long newest = seqOf(chatBox.getChildren().get(chatBox.getChildren().size() - 1));
+        if (vvalue < PREFETCH_THRESHOLD && oldest != null && oldest > 0) {
+            requestPage(oldest);
+        } else if (vvalue > 1 - PREFETCH_THRESHOLD && detached && newest != null) {
+            requestPage(newest + 1 + PAGE_SIZE);
+        }
+    }
+
+    /**
+     * Shows a page of history, either replacing the chat or extending it above or below.
+     * @param firstSeq the sequence number of the first message in the page
+     * @param count the number of messages in the page
+     * @param records the history records of the page
+     */
+    private void showPage(long firstSeq, int count, byte[] records) {
+        loading = false;
+        List<Node> page = new ArrayList<>(count);
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(records));
+            for (int i = 0; i < count; i++) {
+                Date timestamp = new Date(in.readLong());
+                String sender = in.readUTF();
+                String message = in.readUTF();
+                page.add(createMessageBox(sender.equals(currentUser.getUsername()) ? "You" : sender, message, timestamp, firstSeq + i));
             }
         } catch (IOException e) {
             e.printStackTrace();
+            return;
+        }
+
+        List<Node> children = chatBox.getChildren();
+        Long oldest = children.isEmpty() ? null : seqOf(children.get(0));
+        if (requestedBefore == Long.MAX_VALUE || oldest == null) {
+            // Latest screen: replace everything and follow new messages again
+            children.setAll(page);
+            detached = false;
+            scrollChatToBottom();
+        } else if (!page.isEmpty() && firstSeq + count <= oldest) {
+            // Older messages: prepend, keeping the current top message in place
+            keepInView(children.get(0), () -> {
+                children.addAll(0, page);
+                trimBottom();
+            });
+        } else if (!page.isEmpty()) {
+            // Newer messages: append those not already shown, keeping the current bottom message in place
+            keepInView(children.get(children.size() - 1), () -> {
+                page.stream().filter(node -> !isShown(seqOf(node))).forEach(children::add);
+                trimTop();
+            });
+            // A page cut short by the end of the history reaches the live messages
+            detached = firstSeq + count < requestedBefore;
+        }
+
+        if (jumpToLatest) {
+            requestPage(Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Removes the oldest messages once the chat box holds more than it may keep.
+     */
+    private void trimTop() {
+        List<Node> children = chatBox.getChildren();
+        if (children.size() > MAX_MESSAGES) {
+            children.remove(0, children.size() - MAX_MESSAGES);
+        }
+    }
+
+    /**
+     * Removes the newest messages once the chat box holds more than it may keep.
+     */
+    private void trimBottom() {
+        List<Node> children = chatBox.getChildren();
+        if (children.size() > MAX_MESSAGES) {
+            children.remove(MAX_MESSAGES, children.size());
+            detached = true;
+        }
+    }
+
+    /**
+     * Applies a change to the chat box without moving the given message on screen.
+     * @param anchor a message that stays in the chat box during the change
+     * @param change the change to the chat box
+     */
+    private void keepInView(Node anchor, Runnable change) {
+        double position = anchor.getBoundsInParent().getMinY() - scrollRange() * chatScrollPane.getVvalue();
+        change.run();
+        chatScrollPane.applyCss();
+        chatScrollPane.layout();
+        double range = scrollRange();
+        if (range > 0) {
+            chatScrollPane.setVvalue(Math.max(0, Math.min(1, (anchor.getBoundsInParent().getMinY() - position) / range)));
+        }
+    }
+
+    /**
+     * Retrieves the height of the chat box that lies outside the visible area.
+     * @return the scrollable height in pixels
+     */
+    private double scrollRange() {
+        return Math.max(0, chatBox.getHeight() - chatScrollPane.getViewportBounds().getHeight());
+    }
+
+    /**
+     * Retrieves the sequence number of a message in the chat box.
+     * @param messageBox the message box
+     * @return the sequence number, or null if the server has not acknowledged the message yet
+     */
+    private Long seqOf(Node messageBox) {
+        return (Long) messageBox.getUserData();
+    }
+
+    /**
+     * Checks whether the chat box already ends at or after a message.
+     * @param seq the sequence number of the message
+     * @return true if the newest acknowledged message shown is not older than the given one
+     */
+    private boolean isShown(long seq) {
+        List<Node> children = chatBox.getChildren();
+        for (int i = children.size() - 1; i >= 0; i--) {
+            Long shown = seqOf(children.get(i));
+            if (shown != null) {
+                return shown >= seq;
+            }
         }
+        return false;
     }
 
     /**
      * Scrolls the chat to the bottom.
      */
     private void scrollChatToBottom() {
-        chatBox.heightProperty().addListener(observable -> chatScrollPane.setVvalue(1.0));
+        chatScrollPane.applyCss();
+        chatScrollPane.layout();
+        chatScrollPane.setVvalue(1.0);
     }
 
     /**
-     * Adds a message to the chat box.
+     * Adds a message to the bottom of the chat box.
      * @param sender the sender of the message
      * @param message the message content
+     * @param timestamp the time the message was sent
+     * @param seq the sequence number of the message, or null if not yet known
+     * @return the message box added to the chat box
      */
-    private void addMessageToChat(String sender, String message) {
+    private Node addMessageToChat(String sender, String message, Date timestamp, Long seq) {
+        Node messageBox = createMessageBox(sender, message, timestamp, seq);
+        chatBox.getChildren().add(messageBox);
+        return messageBox;
+    }
+
+    /**
+     * Creates the box showing a message.
+     * @param sender the sender of the message
+     * @param message the message content
+     * @param timestamp the time the message was sent
+     * @param seq the sequence number of the message, or null if not yet known
+     * @return the message box
+     */
+    private Node createMessageBox(String sender, String message, Date timestamp, Long seq) {
         // Message label
         Label messageLabel = new Label(message);
         messageLabel.setWrapText(true);
@@ -228,16 +466,17 @@ public class Userone extends Application {
         Label senderLabel = new Label(sender);
 
         // Time label
-        Calendar cal = Calendar.getInstance();
         SimpleDateFormat sdf = new SimpleDateFormat("HH:mm");
-        Label timeLabel = new Label(sdf.format(cal.getTime()));
+        Label timeLabel = new Label(sdf.format(timestamp));
 
         // Message box container
         VBox messageBox = new VBox(5, senderLabel, messageLabel, timeLabel);
         messageBox.setAlignment(sender.equals("You") ? Pos.TOP_LEFT : Pos.TOP_RIGHT);
         messageLabel.setStyle(sender.equals("You") ? "-fx-background-color: #3944BC; -fx-text-fill: white; -fx-padding: 10px; -fx-border-radius: 20px; -fx-background-radius: 20px;" : "-fx-background-color: #018749; -fx-text-fill: white; -fx-padding: 10px; -fx-border-radius: 20px; -fx-background-radius: 20px;");
 
-        // Add message box to chat box
-        chatBox.getChildren().add(messageBox);
+        // Remember the sequence number for paging
+        messageBox.setUserData(seq);
+
+        return messageBox;
     }
 }
\ No newline at end of file
@@ -24,8 +24,13 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * JavaFX chat application for User Two.
@@ -38,6 +43,15 @@ public class Usertwo extends Application {
     private DataInputStream dis;
     private DataOutputStream dos;
     private ScrollPane chatScrollPane;
+    private final MessageFilter messageFilter = new MessageFilter();
+    private final User remoteUser = new User("One");
+    private User currentUser;
+    private ChatHistory history;
+    // Stores messages and writes every frame to user One, in order and off the JavaFX thread
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+
+    // Messages of stored history shown when the window opens
+    private static final int HISTORY_PAGE_SIZE = 50;
 
     public static void main(String[] args) {
         launch(args);
@@ -49,7 +63,7 @@ public class Usertwo extends Application {
 
         BorderPane root = new BorderPane();
 
-        User currentUser = new User("Two");
+        currentUser = new User("Two");
         currentUser.setProfilePhotoPath(getClass().getResource("/icons/2.png").toString());
 
         // Top Panel for showcasing the user profile photo and status
@@ -70,8 +84,22 @@ public class Usertwo extends Application {
         primaryStage.setScene(new Scene(root, 490, 700));
         primaryStage.show();
 
+        // Load the delivery rules for messages from user One
+        Path rulesFile = Path.of(System.getProperty("user.home"), ".chatter", "filters.txt");
+        if (Files.exists(rulesFile)) {
+            try {
+                messageFilter.loadRules(rulesFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
         // Start server
         try {
+            // Open the stored history so user One can page through it
+            history = new ChatHistory(Path.of(System.getProperty("user.home"), ".chatter", "history"), HistoryProtocol.DEFAULT_ROOM);
+            showLatestHistory();
+
             ServerSocket serverSocket = new ServerSocket(6001);
             clientSocket = serverSocket.accept();
             dis = new DataInputStream(clientSocket.getInputStream());
@@ -85,6 +113,35 @@ public class Usertwo extends Application {
         }
     }
 
+    /**
+     * Waits for pending writes to finish and closes the stored history.
+     * @throws Exception if the history cannot be closed
+     */
+    @Override
+    public void stop() throws Exception {
+        writer.shutdown();
+        writer.awaitTermination(5, TimeUnit.SECONDS);
+        if (history != null) {
+            history.close();
+        }
+    }
+
+    /**
+     * Shows the latest page of stored history in the chat box.
+     * @throws IOException if the history cannot be read
+     */
+    private void showLatestHistory() throws IOException {
+        for (Message message : history.readMessages(Long.MAX_VALUE, HISTORY_PAGE_SIZE)) {
+            User sender = message.getSender();
+            if (sender.getUsername().equals(currentUser.getUsername())) {
+                addMessageToChat("You", message.getContent(), message.getTimestamp());
+            } else if (messageFilter.check(HistoryProtocol.DEFAULT_ROOM, sender, message.getContent()) != MessageFilter.Decision.DROP) {
+                addMessageToChat(sender.getUsername(), message.getContent(), message.getTimestamp());
+            }
+        }
+        scrollChatToBottom();
+    }
+
     /**
      * Creates the top panel with user information.
      * @param currentUser the current user of the chat
@@ -160,26 +217,58 @@ public class Usertwo extends Application {
      */
     private void sendMessage(String message) {
         if (!message.isEmpty()) {
-            try {
-                dos.writeUTF(message); // Send message to user One
-                addMessageToChat("You", message); // Display message in the chat box
-                text.clear(); // Clear the text area after sending the message
-            } catch (IOException e) {
-                e.printStackTrace(); // Handle exceptions
-            }
+            Date timestamp = new Date();
+            writer.execute(() -> {
+                try {
+                    long seq = history.append(currentUser.getUsername(), message, timestamp.getTime()); // Store the message in the history
+                    HistoryProtocol.writeMessage(dos, seq, message); // Send message to user One
+                } catch (IOException e) {
+                    e.printStackTrace(); // Handle exceptions
+                }
+            });
+            addMessageToChat("You", message, timestamp); // Display message in the chat box
+            text.clear(); // Clear the text area after sending the message
         }
     }
 
     /**
-     * Receives messages from the server and updates the chat box.
+     * Receives frames from user One, storing and displaying messages and answering history requests.
      */
     private void receiveMessages() {
         try {
             while (true) {
+                byte type = dis.readByte(); // Read the type of the next frame from user One
+                if (type == HistoryProtocol.HISTORY_REQUEST) {
+                    String room = dis.readUTF();
+                    long before = dis.readLong();
+                    int limit = dis.readInt();
+                    writer.execute(() -> sendHistoryPage(room, before, limit));
+                    continue;
+                }
+                if (type != HistoryProtocol.MESSAGE) {
+                    throw new IOException("Unknown frame type " + type);
+                }
+
                 String receivedMessage = dis.readUTF(); // Read new message from user One
+                Date timestamp = new Date();
+                writer.execute(() -> {
+                    try {
+                        long seq = history.append(remoteUser.getUsername(), receivedMessage, timestamp.getTime()); // Store the message in the history
+                        HistoryProtocol.writeAck(dos, seq); // Tell user One the sequence number of its message
+                    } catch (IOException e) {
+                        e.printStackTrace(); // Handle exceptions
+                    }
+                });
+
+                MessageFilter.Decision decision = messageFilter.check(HistoryProtocol.DEFAULT_ROOM, remoteUser, receivedMessage); // Apply the delivery rules
+                if (decision == MessageFilter.Decision.DROP) {
+                    continue;
+                }
                 Platform.runLater(() -> {
-                    addMessageToChat("One", receivedMessage); // Add the received message to the chat box
-                    scrollChatToBottom(); // Scroll to the bottom of the chat box
+                    addMessageToChat(remoteUser.getUsername(), receivedMessage, timestamp); // Add the received message to the chat box
+                    if (decision == MessageFilter.Decision.DELIVER) {
+                        scrollChatToBottom(); // Scroll to the bottom of the chat box
+                    }
                 });
             }
         } catch (IOException e) {
@@ -187,28 +276,45 @@ public class Usertwo extends Application {
         }
     }
 
+    /**
+     * Sends a page of stored history to user One. Runs on the writer thread.
+     * @param room the room whose history is requested
+     * @param before the sequence number the page ends before
+     * @param limit the maximum number of messages in the page
+     */
+    private void sendHistoryPage(String room, long before, int limit) {
+        try {
+            // Copy the raw records from the history files; unknown rooms have no history
+            HistoryProtocol.writePage(dos, room, room.equals(HistoryProtocol.DEFAULT_ROOM) ? history : null, before, limit);
+        } catch (IOException e) {
+            e.printStackTrace(); // Handle exceptions
+        }
+    }
+
     /**
      * Scrolls the chat box to the bottom.
      */
     private void scrollChatToBottom() {
-        chatBox.heightProperty().addListener(observable -> chatScrollPane.setVvalue(1.0)); // Listen for changes in the chat box height and adjust the scroll pane
+        chatScrollPane.applyCss(); // Lay out the new messages so the scroll pane knows their height
+        chatScrollPane.layout();
+        chatScrollPane.setVvalue(1.0); // Scroll once; muted messages must not pull the chat down later
     }
 
     /**
      * Adds a message to the chat box.
      * @param sender the sender of the message
      * @param message the content of the message
+     * @param timestamp the time the message was sent
      */
-    private void addMessageToChat(String sender, String message) {
+    private void addMessageToChat(String sender, String message, Date timestamp) {
         Label messageLabel = new Label(message); // Create a label for the message content
         messageLabel.setWrapText(true); // Enable text wrapping within the label
 
         Label senderLabel = new Label(sender); // Create a label for the sender's name
 
-        // Create a label for the timestamp using the current time
-        Calendar cal = Calendar.getInstance();
+        // Create a label for the timestamp of the message
         SimpleDateFormat sdf = new SimpleDateFormat("HH:mm");
-        Label timeLabel = new Label(sdf.format(cal.getTime()));
+        Label timeLabel = new Label(sdf.format(timestamp));
 
         // Create a container for the message components
         VBox messageBox = new VBox(5, senderLabel, messageLabel, timeLabel);
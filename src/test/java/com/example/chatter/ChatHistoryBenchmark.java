@@ -0,0 +1,78 @@
+package com.example.chatter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reopening a conversation: the server opens its history and writes the latest page, and the
+ * client decodes the page's records the way Userone does before creating its message boxes.
+ * Laying out the message boxes in JavaFX is not included.
+ * Run with: mvn -Pbenchmark test
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatHistoryBenchmark {
+    private static final String ROOM = "room";
+
+    @Param({"1000", "1000000"})
+    private int messageCount;
+
+    private Path directory;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("chatter-history");
+        HistoryFixture.write(directory, ROOM, messageCount);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(directory.resolve(ROOM + ".log"));
+        Files.deleteIfExists(directory.resolve(ROOM + ".idx"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public int openLatestPage() throws IOException {
+        ByteArrayOutputStream page = new ByteArrayOutputStream();
+        try (ChatHistory history = new ChatHistory(directory, ROOM)) {
+            HistoryProtocol.writePage(new DataOutputStream(page), ROOM, history, Long.MAX_VALUE, 50);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(page.toByteArray()));
+        in.readByte();
+        in.readUTF();
+        in.readLong();
+        int count = in.readInt();
+        in.readInt();
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            in.readLong();
+            length += in.readUTF().length() + in.readUTF().length();
+        }
+        return length;
+    }
+}
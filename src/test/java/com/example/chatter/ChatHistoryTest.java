@@ -0,0 +1,242 @@
+package com.example.chatter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertIterableEquals;
+
+class ChatHistoryTest {
+    private static final String ROOM = "room";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void appendReturnsSequenceNumbers() throws IOException {
+        try (ChatHistory history = new ChatHistory(directory, ROOM)) {
+            assertEquals(0, history.append("One", "a", 1));
+            assertEquals(1, history.append("Two", "b", 2));
+            assertEquals(2, history.size());
+        }
+    }
+
+    @Test
+    void pagesRoundTripRecords() throws IOException {
+        try (ChatHistory history = new ChatHistory(directory, ROOM)) {
+            history.append("One", "hello", 1000);
+            history.append("Two", "héllo 你好", 2000);
+
+            assertIterableEquals(List.of("0 1000 One hello", "1 2000 Two héllo 你好"),
+                    readPage(history, Long.MAX_VALUE, 50));
+        }
+    }
+
+    @Test
+    void pagesEndBeforeSequence() throws IOException {
+        try (ChatHistory history = open(5)) {
+            assertIterableEquals(List.of("m2", "m3", "m4"), contents(history, Long.MAX_VALUE, 3));
+            assertIterableEquals(List.of("m1", "m2"), contents(history, 3, 2));
+            assertIterableEquals(List.of("m0", "m1"), contents(history, 2, 50));
+        }
+    }
+
+    @Test
+    void clampsBefore() throws IOException {
+        try (ChatHistory history = open(5)) {
+            assertIterableEquals(List.of("m3", "m4"), contents(history, 100, 2));
+            assertIterableEquals(List.of(), contents(history, 0, 2));
+            assertIterableEquals(List.of(), contents(history, -7, 2));
+        }
+    }
+
+    @Test
+    void clampsLimit() throws IOException {
+        try (ChatHistory history = open(5)) {
+            assertIterableEquals(List.of(), contents(history, Long.MAX_VALUE, 0));
+            assertIterableEquals(List.of(), contents(history, Long.MAX_VALUE, -1));
+            assertIterableEquals(List.of("m0", "m1", "m2", "m3", "m4"), contents(history, Long.MAX_VALUE, 500));
+        }
+    }
+
+    @Test
+    void pagesEmptyHistory() throws IOException {
+        try (ChatHistory history = new ChatHistory(directory, ROOM)) {
+            assertIterableEquals(List.of(), readPage(history, Long.MAX_VALUE, 50));
+        }
+    }
+
+    @Test
+    void reopenContinuesSequence() throws IOException {
+        open(3).close();
+
+        try (ChatHistory history = new ChatHistory(directory, ROOM)) {
+            assertEquals(3, history.size());
+            assertEquals(3, history.append("One", "m3", 3));
+            assertIterableEquals(List.of("m0", "m1", "m2", "m3"), contents(history, Long.MAX_VALUE, 50));
+        }
+    }
+
+    @Test
+    void dropsRecordWithoutIndexEntry() throws IOException {
+        try (ChatHistory history = new ChatHistory(directory, ROOM)) {
+            history.append("One", "a", 1);
+            history.append("One", "b", 2);
+        }
+        long logLength = Files.size(directory.resolve(ROOM + ".log"));
+
+        // A crash between writing a record and its index entry leaves the record orphaned in the log
+        ByteArrayOutputStream orphan = new ByteArrayOutputStream();
+        HistoryProtocol.writeRecord(new DataOutputStream(orphan), 3, "One", "lost");
+        Files.write(directory.resolve(ROOM + ".log"), orphan.toByteArray(), StandardOpenOption.APPEND);
+
+        try (ChatHistory history = new ChatHistory(directory, ROOM)) {
+            assertEquals(logLength, Files.size(directory.resolve(ROOM + ".log")));
+            assertEquals(2, history.append("One", "c", 4));
+            assertIterableEquals(List.of("a", "b", "c"), contents(history, Long.MAX_VALUE, 50));
+        }
+    }
+
+    @Test
+    void dropsCutOffRecord() throws IOException {
+        open(3).close();
+
+        // The index entry of the last record reached the disk, but not all of the record did
+        cutLog(3);
+
+        try (ChatHistory history = new ChatHistory(directory, ROOM)) {
+            assertEquals(2, history.size());
+            assertEquals(2, history.append("One", "m3", 3));
+            assertIterableEquals(List.of("m0", "m1", "m3"), contents(history, Long.MAX_VALUE, 50));
+        }
+    }
+
+    @Test
+    void dropsIndexEntriesPastTheLog() throws IOException {
+        long firstRecordEnd;
+        try (ChatHistory history = open(1)) {
+            firstRecordEnd = Files.size(directory.resolve(ROOM + ".log"));
+            history.append("One", "m1", 1);
+            history.append("One", "m2", 2);
+        }
+
+        // Only the first record and one byte of the second reached the disk
+        cutLog(Files.size(directory.resolve(ROOM + ".log")) - firstRecordEnd - 1);
+
+        try (ChatHistory history = new ChatHistory(directory, ROOM)) {
+            assertEquals(1, history.size());
+            assertEquals(firstRecordEnd, Files.size(directory.resolve(ROOM + ".log")));
+            assertIterableEquals(List.of("m0"), contents(history, Long.MAX_VALUE, 50));
+        }
+    }
+
+    @Test
+    void dropsPartialIndexEntry() throws IOException {
+        open(2).close();
+        Files.write(directory.resolve(ROOM + ".idx"), new byte[]{0, 0, 0}, StandardOpenOption.APPEND);
+
+        try (ChatHistory history = new ChatHistory(directory, ROOM)) {
+            assertEquals(2, history.size());
+            assertEquals(2, history.append("One", "m2", 2));
+            assertIterableEquals(List.of("m0", "m1", "m2"), contents(history, Long.MAX_VALUE, 50));
+        }
+    }
+
+    @Test
+    void readsMessages() throws IOException {
+        try (ChatHistory history = new ChatHistory(directory, ROOM)) {
+            history.append("One", "a", 1000);
+            history.append("Two", "b", 2000);
+            history.append("One", "c", 3000);
+
+            List<Message> messages = history.readMessages(Long.MAX_VALUE, 2);
+            assertEquals(2, messages.size());
+            assertEquals("Two", messages.get(0).getSender().getUsername());
+            assertEquals("b", messages.get(0).getContent());
+            assertEquals(2000, messages.get(0).getTimestamp().getTime());
+            assertEquals("c", messages.get(1).getContent());
+
+            assertEquals("a", history.readMessages(1, 50).get(0).getContent());
+            assertEquals(0, history.readMessages(0, 50).size());
+            assertEquals(0, history.readMessages(Long.MAX_VALUE, 0).size());
+        }
+    }
+
+    @Test
+    void opensLatestPageOfMillionMessages() throws IOException {
+        HistoryFixture.write(directory, ROOM, 1_000_000);
+
+        try (ChatHistory history = new ChatHistory(directory, ROOM)) {
+            assertEquals(1_000_000, history.size());
+            List<String> page = readPage(history, Long.MAX_VALUE, 50);
+            assertEquals(50, page.size());
+            assertEquals("999950 999950 One m999950", page.get(0));
+            assertEquals("999999 999999 One m999999", page.get(49));
+            assertIterableEquals(List.of("m499999"), contents(history, 500_000, 1));
+        }
+    }
+
+    /**
+     * Cuts the given number of bytes off the end of the log.
+     */
+    private void cutLog(long bytes) throws IOException {
+        try (RandomAccessFile log = new RandomAccessFile(directory.resolve(ROOM + ".log").toFile(), "rw")) {
+            log.setLength(log.length() - bytes);
+        }
+    }
+
+    /**
+     * Opens the history and fills it with messages "m0" to "m(count - 1)".
+     */
+    private ChatHistory open(int count) throws IOException {
+        ChatHistory history = new ChatHistory(directory, ROOM);
+        for (int i = 0; i < count; i++) {
+            history.append("One", "m" + i, i);
+        }
+        return history;
+    }
+
+    /**
+     * Reads a page and returns only the message contents.
+     */
+    private static List<String> contents(ChatHistory history, long before, int limit) throws IOException {
+        List<String> contents = new ArrayList<>();
+        for (String record : readPage(history, before, limit)) {
+            contents.add(record.substring(record.lastIndexOf(' ') + 1));
+        }
+        return contents;
+    }
+
+    /**
+     * Reads a page and returns each record as "sequence timestamp sender content".
+     */
+    private static List<String> readPage(ChatHistory history, long before, int limit) throws IOException {
+        ByteArrayOutputStream page = new ByteArrayOutputStream();
+        history.writePage(new DataOutputStream(page), before, limit);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(page.toByteArray()));
+        long first = in.readLong();
+        int count = in.readInt();
+        int length = in.readInt();
+        assertEquals(length, in.available());
+
+        List<String> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            records.add((first + i) + " " + in.readLong() + " " + in.readUTF() + " " + in.readUTF());
+        }
+        assertEquals(0, in.available());
+        return records;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.chatter;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes history files directly, in the layout {@link ChatHistory} reads, for tests and benchmarks
+ * that need large histories without appending message by message.
+ */
+final class HistoryFixture {
+
+    private HistoryFixture() {
+    }
+
+    /**
+     * Writes a history of messages "m0" to "m(count - 1)" sent by "One", with timestamps equal to
+     * their sequence numbers.
+     *
+     * @param directory The directory to write the history files to.
+     * @param room      The room of the history.
+     * @param count     The number of messages.
+     * @throws IOException If the files cannot be written.
+     */
+    static void write(Path directory, String room, int count) throws IOException {
+        Files.createDirectories(directory);
+        try (DataOutputStream log = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(directory.resolve(room + ".log"))));
+             DataOutputStream index = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(directory.resolve(room + ".idx"))))) {
+            for (int i = 0; i < count; i++) {
+                index.writeLong(log.size());
+                HistoryProtocol.writeRecord(log, i, "One", "m" + i);
+            }
+        }
+    }
+}
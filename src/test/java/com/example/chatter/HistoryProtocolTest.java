@@ -0,0 +1,113 @@
+package com.example.chatter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HistoryProtocolTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writesClientMessage() throws IOException {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        HistoryProtocol.writeMessage(new DataOutputStream(frame), "hello");
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame.toByteArray()));
+        assertEquals(HistoryProtocol.MESSAGE, in.readByte());
+        assertEquals("hello", in.readUTF());
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    void writesServerMessage() throws IOException {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        HistoryProtocol.writeMessage(new DataOutputStream(frame), 7, "hello");
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame.toByteArray()));
+        assertEquals(HistoryProtocol.MESSAGE, in.readByte());
+        assertEquals(7, in.readLong());
+        assertEquals("hello", in.readUTF());
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    void writesAck() throws IOException {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        HistoryProtocol.writeAck(new DataOutputStream(frame), 9);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame.toByteArray()));
+        assertEquals(HistoryProtocol.ACK, in.readByte());
+        assertEquals(9, in.readLong());
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    void writesPage() throws IOException {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        try (ChatHistory history = new ChatHistory(directory, HistoryProtocol.DEFAULT_ROOM)) {
+            history.append("One", "a", 1);
+            history.append("Two", "b", 2);
+            HistoryProtocol.writePage(new DataOutputStream(frame), HistoryProtocol.DEFAULT_ROOM, history, Long.MAX_VALUE, 1);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame.toByteArray()));
+        assertEquals(HistoryProtocol.HISTORY_PAGE, in.readByte());
+        assertEquals(HistoryProtocol.DEFAULT_ROOM, in.readUTF());
+        assertEquals(1, in.readLong());
+        assertEquals(1, in.readInt());
+        assertEquals(in.readInt(), in.available());
+        assertEquals(2, in.readLong());
+        assertEquals("Two", in.readUTF());
+        assertEquals("b", in.readUTF());
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    void writesEmptyPageForRoomWithoutHistory() throws IOException {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        HistoryProtocol.writePage(new DataOutputStream(frame), "elsewhere", null, Long.MAX_VALUE, 50);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame.toByteArray()));
+        assertEquals(HistoryProtocol.HISTORY_PAGE, in.readByte());
+        assertEquals("elsewhere", in.readUTF());
+        assertEquals(0, in.readLong());
+        assertEquals(0, in.readInt());
+        assertEquals(0, in.readInt());
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    void writesHistoryRequest() throws IOException {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        HistoryProtocol.writeHistoryRequest(new DataOutputStream(frame), HistoryProtocol.DEFAULT_ROOM, 42, 50);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame.toByteArray()));
+        assertEquals(HistoryProtocol.HISTORY_REQUEST, in.readByte());
+        assertEquals(HistoryProtocol.DEFAULT_ROOM, in.readUTF());
+        assertEquals(42, in.readLong());
+        assertEquals(50, in.readInt());
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    void writesRecord() throws IOException {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        HistoryProtocol.writeRecord(new DataOutputStream(record), 1234, "One", "hello");
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.toByteArray()));
+        assertEquals(1234, in.readLong());
+        assertEquals("One", in.readUTF());
+        assertEquals("hello", in.readUTF());
+        assertEquals(0, in.available());
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.chatter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of checking one message against a growing number of delivery rules.
+ * Each rule count adds that many keywords and blocked users; regular expressions are varied separately
+ * because the combined pattern still tries every alternative at each position of the message.
+ * Run with: mvn -Pbenchmark test
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageFilterBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    private int ruleCount;
+
+    @Param({"0", "10", "100"})
+    private int patternCount;
+
+    private MessageFilter filter;
+    private User sender;
+    private User blockedSender;
+    private String message;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        filter = new MessageFilter();
+        for (int i = 0; i < ruleCount; i++) {
+            filter.addKeyword(randomWord(random, 6 + random.nextInt(6)));
+            filter.block(new User("blocked" + i));
+        }
+        for (int i = 0; i < patternCount; i++) {
+            filter.addPattern("\\b" + randomWord(random, 4) + "\\d+\\b");
+        }
+        sender = new User("One");
+        blockedSender = new User("blocked0");
+
+        // No random keyword occurs in the message, so it passes every rule and is scanned in full
+        message = "See you at 7 tomorrow, the meeting moved to room 204 in building 3.";
+
+        // Compile the matchers outside the measurement
+        filter.check(sender, message);
+    }
+
+    @Benchmark
+    public MessageFilter.Decision deliveredMessage() {
+        return filter.check(sender, message);
+    }
+
+    @Benchmark
+    public MessageFilter.Decision blockedSender() {
+        return filter.check(blockedSender, message);
+    }
+
+    /**
+     * Creates a random lower case word.
+     *
+     * @param random The random source.
+     * @param length The length of the word.
+     * @return The word.
+     */
+    private static String randomWord(Random random, int length) {
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(26)));
+        }
+        return word.toString();
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.chatter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+import static com.example.chatter.MessageFilter.Decision.DELIVER;
+import static com.example.chatter.MessageFilter.Decision.DROP;
+import static com.example.chatter.MessageFilter.Decision.SILENT;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MessageFilterTest {
+    private final User one = new User("One");
+    private final User two = new User("Two");
+    private final MessageFilter filter = new MessageFilter();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void deliversWithoutRules() {
+        assertEquals(DELIVER, filter.check(one, "hello"));
+    }
+
+    @Test
+    void dropsOverlappingKeywords() {
+        filter.addKeyword("he");
+        filter.addKeyword("she");
+        filter.addKeyword("hers");
+        filter.addKeyword("spam");
+
+        assertEquals(DROP, filter.check(one, "ushers"));
+        assertEquals(DROP, filter.check(one, "sspam"));
+        assertEquals(DELIVER, filter.check(one, "sam sp ok"));
+        assertEquals(DELIVER, filter.check(one, "shx"));
+    }
+
+    @Test
+    void matchesKeywordsIgnoringCase() {
+        filter.addKeyword("Spam");
+
+        assertEquals(DROP, filter.check(one, "no SPAM here"));
+        assertEquals(DROP, filter.check(one, "no spam here"));
+    }
+
+    @Test
+    void foldsKeywordsOneCharacterAtATime() {
+        // Capital dotted I lowercases to two chars as a string but to 'i' as a char
+        filter.addKeyword("\u0130stanbul");
+
+        assertEquals(DROP, filter.check(one, "going to \u0130STANBUL"));
+        assertEquals(DROP, filter.check(one, "going to istanbul"));
+    }
+
+    @Test
+    void rebuildsKeywordsAfterCheck() {
+        filter.addKeyword("one");
+        assertEquals(DELIVER, filter.check(one, "two"));
+
+        filter.addKeyword("two");
+        assertEquals(DROP, filter.check(one, "two"));
+    }
+
+    @Test
+    void dropsBlockedSenders() {
+        filter.block(two);
+
+        assertEquals(DROP, filter.check(two, "hello"));
+        assertEquals(DELIVER, filter.check(one, "hello"));
+
+        filter.unblock(two);
+        assertEquals(DELIVER, filter.check(two, "hello"));
+    }
+
+    @Test
+    void deliversMutedSendersSilently() {
+        filter.mute(two);
+
+        assertEquals(SILENT, filter.check(two, "hello"));
+        assertEquals(DELIVER, filter.check(one, "hello"));
+
+        filter.unmute(two);
+        assertEquals(DELIVER, filter.check(two, "hello"));
+    }
+
+    @Test
+    void dropsBeforeMuting() {
+        filter.mute(two);
+        filter.addKeyword("spam");
+        filter.addPattern("\\d{4}");
+
+        assertEquals(DROP, filter.check(two, "spam"));
+        assertEquals(DROP, filter.check(two, "pin 1234"));
+
+        filter.block(two);
+        assertEquals(DROP, filter.check(two, "hello"));
+    }
+
+    @Test
+    void ignoresUnblockAndUnmuteOfUnknownUsers() {
+        filter.unblock(one);
+        filter.unmute(one);
+
+        assertEquals(DELIVER, filter.check(one, "hello"));
+    }
+
+    @Test
+    void dropsAnyMatchingPattern() {
+        filter.addPattern("\\d{4}");
+        filter.addPattern("(?i)free money");
+        assertEquals(DROP, filter.check(one, "pin 1234"));
+        assertEquals(DROP, filter.check(one, "FREE MONEY"));
+        assertEquals(DELIVER, filter.check(one, "pin 123"));
+
+        filter.addPattern("^hi$");
+        assertEquals(DROP, filter.check(one, "hi"));
+        assertEquals(DELIVER, filter.check(one, "hi there"));
+    }
+
+    @Test
+    void rejectsInvalidPatterns() {
+        assertThrows(PatternSyntaxException.class, () -> filter.addPattern("a)|(b"));
+        assertEquals(DELIVER, filter.check(one, "a)|(b"));
+    }
+
+    @Test
+    void rejectsPatternThatSwallowsTheGroup() {
+        filter.addPattern("bar");
+
+        // Valid alone, but \Q quotes the closing parenthesis of the combined pattern
+        assertThrows(PatternSyntaxException.class, () -> filter.addPattern("\\Qfoo"));
+        filter.addPattern("baz");
+
+        assertEquals(DROP, filter.check(one, "bar"));
+        assertEquals(DROP, filter.check(one, "baz"));
+        assertEquals(DELIVER, filter.check(one, "foo"));
+    }
+
+    @Test
+    void rejectsPatternEndingInComment() {
+        filter.addPattern("bar");
+
+        // Valid alone, but the comment runs over the closing parenthesis of the combined pattern
+        assertThrows(PatternSyntaxException.class, () -> filter.addPattern("(?x)a # note"));
+
+        assertEquals(DROP, filter.check(one, "bar"));
+        assertEquals(DELIVER, filter.check(one, "a"));
+    }
+
+    @Test
+    void appliesRoomRulesInTheirRoomOnly() {
+        filter.room("lobby").block(two);
+        filter.room("lobby").addKeyword("spam");
+
+        assertEquals(DROP, filter.check("lobby", two, "hello"));
+        assertEquals(DROP, filter.check("lobby", one, "spam"));
+        assertEquals(DELIVER, filter.check("other", two, "hello"));
+        assertEquals(DELIVER, filter.check("other", one, "spam"));
+        assertEquals(DELIVER, filter.check(two, "hello"));
+    }
+
+    @Test
+    void combinesRoomAndGlobalRules() {
+        filter.mute(two);
+        filter.room("lobby").addPattern("\\d{4}");
+        filter.room("quiet").mute(one);
+
+        assertEquals(SILENT, filter.check("lobby", two, "hello"));
+        assertEquals(DROP, filter.check("lobby", two, "pin 1234"));
+        assertEquals(SILENT, filter.check("quiet", one, "hello"));
+        assertEquals(DELIVER, filter.check("lobby", one, "hello"));
+    }
+
+    @Test
+    void loadsRulesFile() throws IOException {
+        Path file = directory.resolve("filters.txt");
+        Files.write(file, List.of(
+                "# delivery rules",
+                "",
+                "block Two",
+                "mute Three",
+                "keyword free money",
+                "regex \\d{4}",
+                "room lobby",
+                "block One"));
+        filter.loadRules(file);
+
+        assertEquals(DROP, filter.check(two, "hello"));
+        assertEquals(SILENT, filter.check(new User("Three"), "hello"));
+        assertEquals(DROP, filter.check(one, "free money now"));
+        assertEquals(DROP, filter.check(one, "pin 1234"));
+        assertEquals(DELIVER, filter.check(one, "hello"));
+        assertEquals(DROP, filter.check("lobby", one, "hello"));
+        assertEquals(DELIVER, filter.check("other", one, "hello"));
+    }
+
+    @Test
+    void rejectsUnknownRules() throws IOException {
+        Path file = directory.resolve("filters.txt");
+        Files.write(file, List.of("ban Two"));
+
+        assertThrows(IOException.class, () -> filter.loadRules(file));
+    }
+}